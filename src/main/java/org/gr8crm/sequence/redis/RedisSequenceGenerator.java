@@ -8,10 +8,19 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -28,6 +37,50 @@ public class RedisSequenceGenerator implements SequenceGenerator {
     private static final String DEFAULT_FORMAT = "%d";
     private static final int DEFAULT_INCREMENT = 1;
 
+    /**
+     * Compare-and-set of a sequence counter, executed atomically on the server.
+     * KEYS: counter, increment, format [, increment without group, format without group]
+     * ARGV: expected current number (empty string means unconditional), new current number, default increment
+     * Returns nil if the sequence does not exist, otherwise {counter, increment, format}.
+     * All arithmetic is done with INCRBY/DECRBY and results are read back with GET, because Lua numbers
+     * are doubles and would lose precision above 2^53.
+     */
+    private static final String UPDATE_SCRIPT = String.join("\n",
+            "local counter = redis.call('GET', KEYS[1])",
+            "if not counter then",
+            "    return false",
+            "end",
+            "local increment = redis.call('GET', KEYS[2])",
+            "local format = redis.call('GET', KEYS[3])",
+            "if #KEYS > 3 then",
+            "    increment = increment or redis.call('GET', KEYS[4])",
+            "    format = format or redis.call('GET', KEYS[5])",
+            "end",
+            "local step = increment or ARGV[3]",
+            "if ARGV[1] ~= '' then",
+            "    local probe = redis.pcall('INCRBY', KEYS[1], step)",
+            "    if type(probe) == 'table' and probe.err then",
+            "        if string.find(probe.err, 'overflow') then",
+            "            return {counter, increment, format}", // counter + step is not a long, so it cannot match
+            "        end",
+            "        return probe",
+            "    end",
+            "    local current = redis.call('GET', KEYS[1])",
+            "    redis.call('DECRBY', KEYS[1], step)",
+            "    if current ~= ARGV[1] then",
+            "        return {counter, increment, format}",
+            "    end",
+            "end",
+            "redis.call('SET', KEYS[1], ARGV[2])",
+            "local moved = redis.pcall('DECRBY', KEYS[1], step)",
+            "if type(moved) == 'table' and moved.err then",
+            "    redis.call('SET', KEYS[1], counter)",
+            "    return moved",
+            "end",
+            "return {redis.call('GET', KEYS[1]), increment, format}");
+
+    private static final String UPDATE_SCRIPT_SHA = sha1(UPDATE_SCRIPT);
+
     private final SequenceGeneratorRedisProperties properties;
 
 
@@ -68,6 +121,63 @@ public class RedisSequenceGenerator implements SequenceGenerator {
         return String.join(KEY_SEPARATOR, tmp);
     }
 
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder s = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                s.append(String.format("%02x", b));
+            }
+            return s.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> updateKeys(String app, long tenant, String name, String group) {
+        List<String> keys = new ArrayList<>(5);
+        keys.add(key(app, tenant, name, group, KEY_SUFFIX_COUNTER));
+        keys.add(key(app, tenant, name, group, KEY_SUFFIX_INCREMENT));
+        keys.add(key(app, tenant, name, group, KEY_SUFFIX_FORMAT));
+        if (group != null) {
+            keys.add(key(app, tenant, name, null, KEY_SUFFIX_INCREMENT)); // Fallback without group
+            keys.add(key(app, tenant, name, null, KEY_SUFFIX_FORMAT));
+        }
+        return keys;
+    }
+
+    private List<String> updateArgs(Long current, long newCurrent) {
+        return Arrays.asList(current != null ? String.valueOf(current) : "",
+                String.valueOf(newCurrent), String.valueOf(DEFAULT_INCREMENT));
+    }
+
+    private SequenceStatus updateStatus(String app, long tenant, String name, String group, Object result) {
+        if (result == null) {
+            return null;
+        }
+        List<?> values = (List<?>) result;
+        SequenceConfiguration.Builder builder = SequenceConfiguration.builder()
+                .withApp(app)
+                .withTenant(tenant)
+                .withName(name)
+                .withGroup(group);
+        int increment = DEFAULT_INCREMENT;
+        if (values.get(1) != null) {
+            increment = Integer.valueOf((String) values.get(1));
+            builder.withIncrement(increment);
+        }
+        if (values.get(2) != null) {
+            builder.withFormat((String) values.get(2));
+        }
+        final long counter = Long.parseLong((String) values.get(0));
+        try {
+            return new SequenceStatus(builder.build(), Math.addExact(counter, increment));
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Sequence exhausted: " + key(app, tenant, name, group, null)
+                    + " is at " + counter + " and cannot be incremented by " + increment, e);
+        }
+    }
+
     private int getIncrement(Jedis jedis, String app, long tenant, String name, String group) {
         String value = jedis.get(key(app, tenant, name, group, KEY_SUFFIX_INCREMENT));
         if (value == null) {
@@ -175,21 +285,89 @@ public class RedisSequenceGenerator implements SequenceGenerator {
         }
     }
 
+    private static boolean isNoScript(JedisDataException e) {
+        return e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT");
+    }
+
+    /**
+     * Run a call that uses the update script, loading the script and retrying once if it is not cached on the server.
+     */
+    private <T> T withUpdateScript(Jedis jedis, Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (JedisDataException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            jedis.scriptLoad(UPDATE_SCRIPT);
+            return call.get();
+        }
+    }
+
     @Override
     public SequenceStatus update(String app, long tenant, String name, String group, long current, long newCurrent) {
-        final String key = key(app, tenant, name, group, KEY_SUFFIX_COUNTER);
+        final List<String> keys = updateKeys(app, tenant, name, group);
+        final List<String> args = updateArgs(current, newCurrent);
+        SequenceStatus status;
         try (Jedis jedis = jedisPool.getResource()) {
-            final String stringValue = jedis.get(key);
-            if (stringValue == null) {
-                throw new IllegalArgumentException("No such sequence: " + key(app, tenant, name, group, null));
-            }
-            SequenceConfiguration config = getConfiguration(jedis, app, tenant, name, group);
-            int increment = config.getIncrement();
-            long longValue = Long.parseLong(stringValue) + increment;
-            if (longValue == current) {
-                jedis.set(key, String.valueOf(newCurrent - increment));
+            status = withUpdateScript(jedis, () ->
+                    updateStatus(app, tenant, name, group, jedis.evalsha(UPDATE_SCRIPT_SHA, keys, args)));
+        }
+        if (status == null) {
+            throw new IllegalArgumentException("No such sequence: " + key(app, tenant, name, group, null));
+        }
+        return status;
+    }
+
+    /**
+     * Move many sequences of a tenant to new numbers in a single pipelined pass.
+     * Each sequence is updated atomically with the same compare-and-set semantics as
+     * {@link #update(String, long, String, String, long, long)}, unless the rebase has no expected current number.
+     * A sequence that fails does not affect the others, its error is reported in its result.
+     *
+     * @param app     application name
+     * @param tenant  tenant id
+     * @param rebases sequences to move
+     * @return result of each rebase, in the same order as the rebases, with null for sequences that do not exist
+     */
+    public List<SequenceRebaseResult> rebase(String app, long tenant, Collection<SequenceRebase> rebases) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return withUpdateScript(jedis, () -> {
+                final List<Response<Object>> responses = new ArrayList<>(rebases.size());
+                Pipeline pipeline = jedis.pipelined();
+                for (SequenceRebase rebase : rebases) {
+                    responses.add(pipeline.evalsha(UPDATE_SCRIPT_SHA,
+                            updateKeys(app, tenant, rebase.getName(), rebase.getGroup()),
+                            updateArgs(rebase.getCurrent(), rebase.getNewCurrent())));
+                }
+                pipeline.sync();
+                final List<SequenceRebaseResult> result = new ArrayList<>(responses.size());
+                int i = 0;
+                for (SequenceRebase rebase : rebases) {
+                    result.add(rebaseResult(app, tenant, rebase, responses.get(i), i == 0));
+                    i++;
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * A NOSCRIPT error on the first response means the script was not cached when the pipeline ran,
+     * so it is rethrown to retry the whole pipeline. Any other error belongs to that sequence only.
+     */
+    private SequenceRebaseResult rebaseResult(String app, long tenant, SequenceRebase rebase,
+                                              Response<Object> response, boolean first) {
+        try {
+            SequenceStatus status = updateStatus(app, tenant, rebase.getName(), rebase.getGroup(), response.get());
+            return status != null ? SequenceRebaseResult.success(rebase, status) : null;
+        } catch (JedisDataException e) {
+            if (first && isNoScript(e)) {
+                throw e;
             }
-            return status(app, tenant, name, group);
+            return SequenceRebaseResult.failure(rebase, e);
+        } catch (IllegalStateException e) {
+            return SequenceRebaseResult.failure(rebase, e);
         }
     }
 
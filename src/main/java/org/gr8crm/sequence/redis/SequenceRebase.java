@@ -0,0 +1,83 @@
+package org.gr8crm.sequence.redis;
+
+import java.util.Objects;
+
+/**
+ * Describes one sequence to move to a new value in a bulk rebase.
+ *
+ * @see RedisSequenceGenerator#rebase(String, long, java.util.Collection)
+ */
+public class SequenceRebase {
+
+    private final String name;
+    private final String group;
+    private final Long current;
+    private final long newCurrent;
+
+    private SequenceRebase(String name, String group, Long current, long newCurrent) {
+        this.name = name;
+        this.group = group;
+        this.current = current;
+        this.newCurrent = newCurrent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * The number the sequence must currently be at for the rebase to take effect,
+     * or null to move the sequence regardless of its current number.
+     */
+    public Long getCurrent() {
+        return current;
+    }
+
+    public long getNewCurrent() {
+        return newCurrent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String name;
+        private String group;
+        private Long current;
+        private Long newCurrent;
+
+        private Builder() {
+        }
+
+        public Builder withName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder withGroup(String group) {
+            this.group = group;
+            return this;
+        }
+
+        public Builder withCurrent(long current) {
+            this.current = current;
+            return this;
+        }
+
+        public Builder withNewCurrent(long newCurrent) {
+            this.newCurrent = newCurrent;
+            return this;
+        }
+
+        public SequenceRebase build() {
+            Objects.requireNonNull(name, "sequence name must be specified");
+            Objects.requireNonNull(newCurrent, "new current number must be specified");
+            return new SequenceRebase(name, group, current, newCurrent);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.gr8crm.sequence.redis;
+
+import org.gr8crm.sequence.SequenceStatus;
+
+/**
+ * Outcome of one sequence in a bulk rebase, either the status after the rebase or the error that prevented it.
+ *
+ * @see RedisSequenceGenerator#rebase(String, long, java.util.Collection)
+ */
+public class SequenceRebaseResult {
+
+    private final SequenceRebase rebase;
+    private final SequenceStatus status;
+    private final RuntimeException error;
+
+    private SequenceRebaseResult(SequenceRebase rebase, SequenceStatus status, RuntimeException error) {
+        this.rebase = rebase;
+        this.status = status;
+        this.error = error;
+    }
+
+    static SequenceRebaseResult success(SequenceRebase rebase, SequenceStatus status) {
+        return new SequenceRebaseResult(rebase, status, null);
+    }
+
+    static SequenceRebaseResult failure(SequenceRebase rebase, RuntimeException error) {
+        return new SequenceRebaseResult(rebase, null, error);
+    }
+
+    public SequenceRebase getRebase() {
+        return rebase;
+    }
+
+    /**
+     * Status of the sequence after the rebase, or null if the rebase failed.
+     * The number equals the rebase's new current number only if the compare-and-set took effect.
+     */
+    public SequenceStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * The error that prevented the rebase, or null if it succeeded.
+     * A failed rebase has left the sequence unchanged.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
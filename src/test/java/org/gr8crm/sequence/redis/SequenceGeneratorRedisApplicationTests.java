@@ -18,6 +18,7 @@ package org.gr8crm.sequence.redis;
 
 import org.gr8crm.sequence.SequenceConfiguration;
 import org.gr8crm.sequence.SequenceGenerator;
+import org.gr8crm.sequence.SequenceStatus;
 import org.gr8crm.sequence.SimpleSequenceGenerator;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,11 +26,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.junit4.SpringRunner;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -43,6 +49,9 @@ public class SequenceGeneratorRedisApplicationTests {
     @Autowired
     private SequenceGenerator sequenceGenerator;
 
+    @Autowired
+    private JedisPool jedisPool;
+
     @Test
     public void contextLoads() {
         assertNotNull(context);
@@ -248,6 +257,295 @@ public class SequenceGeneratorRedisApplicationTests {
         }
     }
 
+    @Test
+    public void updateSequence() {
+        // given:
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("update")
+                .withGroup("A")
+                .withStart(1)
+                .withIncrement(2)
+                .build());
+        assertEquals("1", sequenceGenerator.nextNumber("test", 1, "update", "A"));
+
+        // when:
+        SequenceStatus status = sequenceGenerator.update("test", 1, "update", "A", 3, 1001);
+
+        // then:
+        assertEquals(1001, status.getNumber());
+        assertEquals(2, status.getConfiguration().getIncrement());
+        assertEquals("%d", status.getConfiguration().getFormat());
+        assertEquals("1001", sequenceGenerator.nextNumber("test", 1, "update", "A"));
+
+        // when: current number does not match
+        status = sequenceGenerator.update("test", 1, "update", "A", 42, 5000);
+
+        // then:
+        assertEquals(1003, status.getNumber());
+        assertEquals("1003", sequenceGenerator.nextNumber("test", 1, "update", "A"));
+    }
+
+    @Test
+    public void updateGroupFallback() {
+        // given: a group without its own increment and format, so its counter 0 is current number 5
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("fallback")
+                .withStart(1)
+                .withIncrement(5)
+                .withFormat("%05d")
+                .build());
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("fallback")
+                .withGroup("A")
+                .withStart(1)
+                .build());
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.del("test/1/fallback/A/+", "test/1/fallback/A/%");
+        }
+
+        // when:
+        SequenceStatus status = sequenceGenerator.update("test", 1, "fallback", "A", 5, 100);
+
+        // then:
+        assertEquals(100, status.getNumber());
+        assertEquals(5, status.getConfiguration().getIncrement());
+        assertEquals("%05d", status.getConfiguration().getFormat());
+        assertEquals("00100", sequenceGenerator.nextNumber("test", 1, "fallback", "A"));
+        assertEquals("00105", sequenceGenerator.nextNumber("test", 1, "fallback", "A"));
+    }
+
+    @Test
+    public void updateLargeNumbers() {
+        // given:
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("large")
+                .withStart(1)
+                .build());
+        final long large = (1L << 53) + 1;
+
+        // when:
+        SequenceStatus status = sequenceGenerator.update("test", 1, "large", null, 1, large);
+
+        // then:
+        assertEquals(large, status.getNumber());
+
+        // when: compare with a number that a double cannot tell apart from the current one
+        status = sequenceGenerator.update("test", 1, "large", null, large - 1, 1);
+
+        // then:
+        assertEquals(large, status.getNumber());
+        assertEquals(large, sequenceGenerator.nextNumberLong("test", 1, "large", null));
+
+        // when:
+        status = sequenceGenerator.update("test", 1, "large", null, large + 1, Long.MAX_VALUE - 1);
+
+        // then:
+        assertEquals(Long.MAX_VALUE - 1, status.getNumber());
+        assertEquals(Long.MAX_VALUE - 1, sequenceGenerator.nextNumberLong("test", 1, "large", null));
+        assertEquals(Long.MAX_VALUE, sequenceGenerator.nextNumberLong("test", 1, "large", null));
+    }
+
+    @Test
+    public void rebaseWithoutNewCurrent() {
+        try {
+            SequenceRebase.builder().withName("x").build();
+            fail("NullPointerException expected here");
+        } catch (NullPointerException e) {
+            assertEquals("new current number must be specified", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rebaseSequences() {
+        // given:
+        for (String name : Arrays.asList("rebase1", "rebase2", "rebase3")) {
+            sequenceGenerator.create(SequenceConfiguration.builder()
+                    .withApp("test")
+                    .withTenant(4)
+                    .withName(name)
+                    .withStart(1)
+                    .build());
+        }
+
+        // when:
+        List<SequenceRebaseResult> result = ((RedisSequenceGenerator) sequenceGenerator).rebase("test", 4, Arrays.asList(
+                SequenceRebase.builder().withName("rebase1").withCurrent(1).withNewCurrent(100).build(),
+                SequenceRebase.builder().withName("rebase2").withCurrent(7).withNewCurrent(200).build(),
+                SequenceRebase.builder().withName("rebase3").withNewCurrent(300).build(),
+                SequenceRebase.builder().withName("missing").withNewCurrent(400).build()));
+
+        // then:
+        assertEquals(4, result.size());
+        assertEquals(100, result.get(0).getStatus().getNumber());
+        assertEquals(1, result.get(1).getStatus().getNumber());
+        assertEquals(300, result.get(2).getStatus().getNumber());
+        assertNull(result.get(3));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(result.get(i).isSuccess());
+            assertEquals(1, result.get(i).getStatus().getConfiguration().getIncrement());
+            assertEquals("%d", result.get(i).getStatus().getConfiguration().getFormat());
+        }
+
+        // and:
+        assertEquals("100", sequenceGenerator.nextNumber("test", 4, "rebase1", null));
+        assertEquals("1", sequenceGenerator.nextNumber("test", 4, "rebase2", null));
+        assertEquals("300", sequenceGenerator.nextNumber("test", 4, "rebase3", null));
+    }
+
+    @Test
+    public void rebaseWithFailures() {
+        // given:
+        for (String name : Arrays.asList("partial1", "partial2", "partial3", "partial4")) {
+            sequenceGenerator.create(SequenceConfiguration.builder()
+                    .withApp("test")
+                    .withTenant(5)
+                    .withName(name)
+                    .withStart(1)
+                    .build());
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("test/5/partial4", String.valueOf(Long.MAX_VALUE));
+        }
+
+        // when:
+        List<SequenceRebaseResult> result = ((RedisSequenceGenerator) sequenceGenerator).rebase("test", 5, Arrays.asList(
+                SequenceRebase.builder().withName("partial1").withNewCurrent(100).build(),
+                SequenceRebase.builder().withName("partial2").withNewCurrent(Long.MIN_VALUE).build(),
+                SequenceRebase.builder().withName("partial3").withCurrent(1).withNewCurrent(300).build(),
+                SequenceRebase.builder().withName("partial4").withCurrent(1).withNewCurrent(400).build()));
+
+        // then:
+        assertEquals(4, result.size());
+        assertTrue(result.get(0).isSuccess());
+        assertEquals(100, result.get(0).getStatus().getNumber());
+        assertFalse(result.get(1).isSuccess());
+        assertNull(result.get(1).getStatus());
+        assertTrue(result.get(1).getError() instanceof JedisDataException);
+        assertTrue(result.get(2).isSuccess());
+        assertEquals(300, result.get(2).getStatus().getNumber());
+        assertFalse(result.get(3).isSuccess());
+        assertTrue(result.get(3).getError() instanceof IllegalStateException);
+
+        // and: failed sequences are unchanged
+        assertEquals("100", sequenceGenerator.nextNumber("test", 5, "partial1", null));
+        assertEquals("1", sequenceGenerator.nextNumber("test", 5, "partial2", null));
+        assertEquals("300", sequenceGenerator.nextNumber("test", 5, "partial3", null));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertEquals(String.valueOf(Long.MAX_VALUE), jedis.get("test/5/partial4"));
+        }
+    }
+
+    @Test
+    public void updateExhaustedSequence() {
+        // given:
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("exhausted")
+                .withStart(1)
+                .build());
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("test/1/exhausted", String.valueOf(Long.MAX_VALUE));
+        }
+
+        // expect:
+        try {
+            sequenceGenerator.update("test", 1, "exhausted", null, 1, 100);
+            fail("IllegalStateException expected here");
+        } catch (IllegalStateException e) {
+            assertEquals("Sequence exhausted: test/1/exhausted is at " + Long.MAX_VALUE
+                    + " and cannot be incremented by 1", e.getMessage());
+        }
+    }
+
+    @Test
+    public void updateAfterScriptFlush() {
+        // given:
+        RedisSequenceGenerator generator = (RedisSequenceGenerator) sequenceGenerator;
+        generator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("flush")
+                .withStart(1)
+                .build());
+
+        // when:
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.scriptFlush();
+        }
+        SequenceStatus status = generator.update("test", 1, "flush", null, 1, 100);
+
+        // then:
+        assertEquals(100, status.getNumber());
+
+        // when:
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.scriptFlush();
+        }
+        List<SequenceRebaseResult> result = generator.rebase("test", 1, Arrays.asList(
+                SequenceRebase.builder().withName("flush").withCurrent(100).withNewCurrent(200).build(),
+                SequenceRebase.builder().withName("missing").withNewCurrent(300).build()));
+
+        // then:
+        assertEquals(2, result.size());
+        assertEquals(200, result.get(0).getStatus().getNumber());
+        assertNull(result.get(1));
+        assertEquals("200", generator.nextNumber("test", 1, "flush", null));
+    }
+
+    @Test
+    public void updateWhileGenerating() throws Exception {
+        // given:
+        sequenceGenerator.create(SequenceConfiguration.builder()
+                .withApp("test")
+                .withTenant(1)
+                .withName("concurrent")
+                .withStart(1)
+                .build());
+        int numberOfThreads = Runtime.getRuntime().availableProcessors() * 2;
+        int numberOfRequests = 5000;
+        final Set<String> numbers = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>(numberOfThreads);
+
+        // when:
+        for (int i = 0; i < numberOfThreads; i++) {
+            Thread t = new Thread(() -> {
+                for (int n = 0; n < numberOfRequests; n++) {
+                    if (!numbers.add(sequenceGenerator.nextNumber("test", 1, "concurrent", null))) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            // Non-matching current number must never touch the counter.
+            sequenceGenerator.update("test", 1, "concurrent", null, -1, 1);
+            // Matching no-op move must not overwrite increments made in between.
+            long current = sequenceGenerator.status("test", 1, "concurrent", null).getNumber();
+            sequenceGenerator.update("test", 1, "concurrent", null, current, current);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // then:
+        int total = numberOfThreads * numberOfRequests;
+        assertEquals(0, duplicates.get());
+        assertEquals(total, numbers.size());
+        assertEquals(total + 1, sequenceGenerator.status("test", 1, "concurrent", null).getNumber());
+    }
+
     @Test
     public void performance() {
         // given: